@@ -31,6 +31,8 @@ CREATE TABLE BOOKING (
    city VARCHAR(50),
    postal_code VARCHAR(10),
    address_line VARCHAR(200),
+   request_key VARCHAR(64),
+   request_hash CHAR(64),
    FOREIGN KEY (guest_id)
         REFERENCES GUEST
         ON DELETE CASCADE 
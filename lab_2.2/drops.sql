@@ -19,6 +19,7 @@ DROP VIEW IF EXISTS guest_booking_statistics CASCADE;
 DROP INDEX IF EXISTS idx_guest_email;
 DROP INDEX IF EXISTS idx_booking_status;
 DROP INDEX IF EXISTS idx_booking_date;
+DROP INDEX IF EXISTS idx_booking_request_key;
 DROP INDEX IF EXISTS idx_booking_item_booking;
 DROP INDEX IF EXISTS idx_rates_room;
 
@@ -50,11 +50,26 @@ CREATE OR REPLACE FUNCTION restore_room_availability()
 RETURNS TRIGGER AS $$
 BEGIN
     IF NEW.status = 'Cancelled' AND OLD.status <> 'Cancelled' THEN
+        -- lock rooms in room_id order, same as the booking path, to avoid deadlocks
+        PERFORM 1
+        FROM ROOM
+        WHERE room_id IN (
+            SELECT room_id
+            FROM BOOKING_ITEM
+            WHERE booking_id = NEW.booking_id
+        )
+        ORDER BY room_id
+        FOR NO KEY UPDATE;
+
         UPDATE ROOM r
         SET availability = availability + bi.nights
-        FROM BOOKING_ITEM bi
-        WHERE r.room_id = bi.room_id
-          AND bi.booking_id = NEW.booking_id;
+        FROM (
+            SELECT room_id, SUM(nights) AS nights
+            FROM BOOKING_ITEM
+            WHERE booking_id = NEW.booking_id
+            GROUP BY room_id
+        ) bi
+        WHERE r.room_id = bi.room_id;
     END IF;
 
     RETURN NEW;
@@ -7,6 +7,9 @@ CREATE INDEX idx_booking_status
 CREATE INDEX idx_booking_date
     ON BOOKING(booking_date);
 
+CREATE UNIQUE INDEX idx_booking_request_key
+    ON BOOKING(request_key);
+
 CREATE INDEX idx_booking_item_booking
     ON BOOKING_ITEM(booking_id);
 
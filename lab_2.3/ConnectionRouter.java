@@ -0,0 +1,268 @@
+import java.sql.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+public class ConnectionRouter implements AutoCloseable {
+  private static final long LAG_CHECK_INTERVAL_MS = 1000;
+
+  private Connection primary;
+  private String primaryUrl;
+  private Properties credentials;
+  private final List<Replica> replicas = new ArrayList<>();
+  private final double maxLagSeconds;
+  private final ArrayDeque<long[]> primaryLsnSamples = new ArrayDeque<>();
+  private long lastSampleMs = 0;
+  private int nextReplica = 0;
+  private long lastWriteLsn = 0;
+
+  private enum ReplicaState { UNCHECKED, HEALTHY, LAGGING, NOT_STANDBY, UNREACHABLE }
+
+  private static class Replica {
+    final String url;
+    Connection conn;
+    ReplicaState state = ReplicaState.UNCHECKED;
+    String lastError = null;
+    long replayLsn = 0;
+    long lastCheckMs = 0;
+
+    Replica(String url, Connection conn) {
+      this.url = url;
+      this.conn = conn;
+    }
+  }
+
+  public ConnectionRouter(Connection primary, double maxLagSeconds) {
+    this.primary = primary;
+    this.maxLagSeconds = maxLagSeconds;
+  }
+
+  public static ConnectionRouter connect(String primaryUrl, String replicaUrls,
+      Properties credentials, double maxLagSeconds) throws SQLException {
+    Connection primary = DriverManager.getConnection(primaryUrl, credentials);
+    ConnectionRouter router = new ConnectionRouter(primary, maxLagSeconds);
+    router.primaryUrl = primaryUrl;
+    router.credentials = credentials;
+
+    if (replicaUrls != null) {
+      for (String url : replicaUrls.split(",")) {
+        url = url.trim();
+        if (url.isEmpty()) {
+          continue;
+        }
+        try {
+          router.addReplica(url, DriverManager.getConnection(url, credentials));
+        } catch (SQLException e) {
+          System.err.println("!! Replica unavailable, skipping: " + url + " (" + e.getMessage() + ")");
+        }
+      }
+    }
+
+    return router;
+  }
+
+  public void addReplica(String url, Connection conn) {
+    replicas.add(new Replica(url, conn));
+  }
+
+  public int replicaCount() {
+    return replicas.size();
+  }
+
+  public Connection primary() {
+    return primary;
+  }
+
+  public Connection reconnectPrimary() throws SQLException {
+    if (primaryUrl == null) {
+      throw new SQLException("Primary connection cannot be re-established", "08003");
+    }
+
+    try {
+      primary.close();
+    } catch (SQLException e) {
+      // already broken, nothing to release
+    }
+    primary = DriverManager.getConnection(primaryUrl, credentials);
+    return primary;
+  }
+
+  /** Replica connection if one is usable for this session, otherwise the primary. */
+  public Connection forRead() throws SQLException {
+    if (replicas.isEmpty() || !primary.getAutoCommit()) {
+      return primary;
+    }
+
+    for (int i = 0; i < replicas.size(); i++) {
+      Replica replica = replicas.get(nextReplica);
+      nextReplica = (nextReplica + 1) % replicas.size();
+
+      if (isUsable(replica)) {
+        return replica.conn;
+      }
+    }
+
+    return primary;
+  }
+
+  public void markWritten() throws SQLException {
+    if (replicas.isEmpty()) {
+      return;
+    }
+
+    try (Statement stmt = primary.createStatement();
+        ResultSet rs = stmt.executeQuery("SELECT pg_current_wal_lsn()::text")) {
+      if (rs.next()) {
+        lastWriteLsn = parseLsn(rs.getString(1));
+      }
+    }
+  }
+
+  private boolean isUsable(Replica replica) throws SQLException {
+    long now = System.currentTimeMillis();
+
+    if (now - replica.lastCheckMs >= LAG_CHECK_INTERVAL_MS) {
+      // errors from the primary propagate; they are not the replica's fault
+      long referenceLsn = primaryLsnBefore(now - (long) (maxLagSeconds * 1000), now);
+      replica.lastCheckMs = now;
+      setState(replica, checkHealth(replica, referenceLsn));
+    }
+    if (replica.state != ReplicaState.HEALTHY) {
+      return false;
+    }
+    if (replica.conn.isClosed()) {
+      dropConnection(replica, new SQLException("connection closed", "08003"));
+      setState(replica, ReplicaState.UNREACHABLE);
+      return false;
+    }
+
+    if (replica.replayLsn < lastWriteLsn) {
+      try {
+        replica.replayLsn = queryReplayLsn(replica.conn);
+      } catch (SQLException e) {
+        dropConnection(replica, e);
+        setState(replica, ReplicaState.UNREACHABLE);
+        return false;
+      }
+    }
+    return replica.replayLsn >= lastWriteLsn;
+  }
+
+  // Compared against the primary, not the replica's own receive position: a
+  // standby whose WAL receiver died looks fully caught up with itself.
+  private ReplicaState checkHealth(Replica replica, long referenceLsn) {
+    try {
+      if (replica.conn == null) {
+        if (credentials == null) {
+          return ReplicaState.UNREACHABLE;
+        }
+        replica.conn = DriverManager.getConnection(replica.url, credentials);
+      }
+
+      try (Statement stmt = replica.conn.createStatement();
+          ResultSet rs = stmt.executeQuery(
+              "SELECT pg_is_in_recovery() AS standby, pg_last_wal_replay_lsn()::text AS replay_lsn")) {
+        rs.next();
+        String replayLsn = rs.getString("replay_lsn");
+        replica.replayLsn = replayLsn == null ? 0 : parseLsn(replayLsn);
+
+        if (!rs.getBoolean("standby")) {
+          return ReplicaState.NOT_STANDBY;
+        }
+        return replica.replayLsn >= referenceLsn ? ReplicaState.HEALTHY : ReplicaState.LAGGING;
+      }
+    } catch (SQLException e) {
+      dropConnection(replica, e);
+      return ReplicaState.UNREACHABLE;
+    }
+  }
+
+  private static void dropConnection(Replica replica, SQLException cause) {
+    replica.lastError = cause.getMessage();
+    if (replica.conn != null) {
+      try {
+        replica.conn.close();
+      } catch (SQLException e) {
+        // already broken, reconnected on the next check
+      }
+      replica.conn = null;
+    }
+  }
+
+  private static void setState(Replica replica, ReplicaState state) {
+    ReplicaState previous = replica.state;
+    replica.state = state;
+
+    // A first check can miss the reference by milliseconds, so a lagging first
+    // result is not reported
+    if (state == previous || state == ReplicaState.HEALTHY
+        || (state == ReplicaState.LAGGING && previous == ReplicaState.UNCHECKED)) {
+      return;
+    }
+
+    String reason = switch (state) {
+      case LAGGING -> "is lagging";
+      case NOT_STANDBY -> "is not a standby";
+      default -> "is unreachable (" + replica.lastError + ")";
+    };
+    System.err.println("!! Replica " + reason + ", using primary: " + replica.url);
+  }
+
+  private static long queryReplayLsn(Connection conn) throws SQLException {
+    try (Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery("SELECT pg_last_wal_replay_lsn()::text")) {
+      rs.next();
+      String lsn = rs.getString(1);
+      return lsn == null ? 0 : parseLsn(lsn);
+    }
+  }
+
+  // Primary WAL position from about maxLag ago. When reads are sparse there is
+  // no sample near the cutoff, and the fresh sample is used instead (stricter).
+  private long primaryLsnBefore(long cutoffMs, long now) throws SQLException {
+    if (now - lastSampleMs >= LAG_CHECK_INTERVAL_MS) {
+      try (Statement stmt = primary.createStatement();
+          ResultSet rs = stmt.executeQuery("SELECT pg_current_wal_lsn()::text")) {
+        rs.next();
+        primaryLsnSamples.addLast(new long[] { now, parseLsn(rs.getString(1)) });
+      }
+      lastSampleMs = now;
+    }
+
+    while (primaryLsnSamples.size() >= 2) {
+      long[] oldest = primaryLsnSamples.pollFirst();
+      if (primaryLsnSamples.peekFirst()[0] > cutoffMs) {
+        primaryLsnSamples.addFirst(oldest);
+        break;
+      }
+    }
+
+    if (primaryLsnSamples.size() >= 2
+        && primaryLsnSamples.peekFirst()[0] < cutoffMs - LAG_CHECK_INTERVAL_MS) {
+      primaryLsnSamples.pollFirst();
+    }
+    return primaryLsnSamples.peekFirst()[1];
+  }
+
+  private static long parseLsn(String lsn) {
+    int slash = lsn.indexOf('/');
+    return (Long.parseLong(lsn.substring(0, slash), 16) << 32)
+        | Long.parseLong(lsn.substring(slash + 1), 16);
+  }
+
+  @Override
+  public void close() throws SQLException {
+    for (Replica replica : replicas) {
+      if (replica.conn == null) {
+        continue;
+      }
+      try {
+        replica.conn.close();
+      } catch (SQLException e) {
+        System.err.println("!! Failed to close replica connection: " + e.getMessage());
+      }
+    }
+    primary.close();
+  }
+}
@@ -1,17 +1,60 @@
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Properties;
 import java.util.Scanner;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
 import java.io.Console;
 
 public class HotelBookingSystem {
   private static final Scanner scanner = new Scanner(System.in);
   private static final String DB_URL = "jdbc:postgresql://pgsql3.mif/studentu";
+  private static final String REPLICA_URLS =
+      System.getProperty("hotel.replicas", System.getenv("HOTEL_REPLICAS"));
+  private static final double REPLICA_MAX_LAG_SECONDS =
+      Double.parseDouble(System.getProperty("hotel.replicaMaxLag", "5"));
+  private static final int MAX_TRANSACTION_ATTEMPTS = 5;
+  private static final int REQUEST_KEY_MAX_LENGTH = 64;
+
+  static final String SEARCH_BY_PRICE_SQL = "SELECT r.room_id, r.room_number, r.price_per_night, " +
+      "r.availability, r.description, " +
+      "COUNT(rt.rating) as rating_count, " +
+      "COALESCE(AVG(rt.rating), 0) as avg_rating " +
+      "FROM ROOM r " +
+      "LEFT JOIN RATES rt ON r.room_id = rt.room_id " +
+      "WHERE r.price_per_night BETWEEN ? AND ? " +
+      "GROUP BY r.room_id, r.room_number, r.price_per_night, " +
+      "r.availability, r.description " +
+      "ORDER BY r.price_per_night";
+  static final String GUEST_STATISTICS_SQL = "SELECT * FROM guest_booking_statistics ORDER BY total_spent DESC";
+  static final String ROOM_STATISTICS_SQL = "SELECT * FROM room_statistics ORDER BY revenue DESC";
+  private static final long RETRY_BASE_DELAY_MS = 50;
+
+  interface TransactionWork<T> {
+    T run(Connection conn) throws SQLException;
+  }
+
+  record BookingItem(int roomId, int nights) {
+  }
+
+  record BookingResult(int bookingId, boolean replayed) {
+  }
+
+  record StoredRequest(int bookingId, int guestId, String requestHash) {
+  }
 
   public static void main(String[] args) {
     loadDriver();
 
-    try (Connection conn = getConnection()) {
-      if (conn != null) {
-        runMenu(conn);
+    try (ConnectionRouter router = getConnection()) {
+      if (router != null) {
+        runMenu(router);
       }
     } catch (SQLException e) {
       System.err.println("DATABASE ERROR: " + e.getMessage());
@@ -30,7 +73,7 @@ public class HotelBookingSystem {
     }
   }
 
-  private static Connection getConnection() throws SQLException {
+  private static ConnectionRouter getConnection() throws SQLException {
     Console console = System.console();
 
     if (console == null) {
@@ -45,10 +88,18 @@ public class HotelBookingSystem {
     String user = console.readLine("Enter username: ");
     char[] password = console.readPassword("Enter password: ");
 
-    Connection conn = null;
+    ConnectionRouter router = null;
     try {
-      conn = DriverManager.getConnection(DB_URL, user, new String(password));
-      System.out.println("\n>> Connection established successfully\n");
+      Properties credentials = new Properties();
+      credentials.setProperty("user", user);
+      credentials.setProperty("password", new String(password));
+
+      router = ConnectionRouter.connect(DB_URL, REPLICA_URLS, credentials, REPLICA_MAX_LAG_SECONDS);
+      System.out.println("\n>> Connection established successfully");
+      if (router.replicaCount() > 0) {
+        System.out.println(">> Read replicas in use: " + router.replicaCount());
+      }
+      System.out.println();
     } catch (SQLException e) {
       System.err.println("\n!! Connection failed - check credentials");
       System.err.println("!! Error: " + e.getMessage());
@@ -57,10 +108,10 @@ public class HotelBookingSystem {
       java.util.Arrays.fill(password, ' ');
     }
 
-    return conn;
+    return router;
   }
 
-  private static void runMenu(Connection conn) throws SQLException {
+  private static void runMenu(ConnectionRouter router) throws SQLException {
     boolean running = true;
 
     while (running) {
@@ -78,25 +129,30 @@ public class HotelBookingSystem {
       try {
         switch (choice) {
           case 1:
-            searchRooms(conn);
+            searchRooms(router.forRead());
             break;
           case 2:
-            registerGuest(conn);
+            registerGuest(router.primary());
+            router.markWritten();
             break;
           case 3:
-            createBookingWithItems(conn);
+            createBookingWithItems(router);
+            router.markWritten();
             break;
           case 4:
-            cancelBooking(conn);
+            cancelBooking(router.primary());
+            router.markWritten();
             break;
           case 5:
-            deleteGuest(conn);
+            deleteGuest(router.primary());
+            router.markWritten();
             break;
           case 6:
-            addRoomRating(conn);
+            addRoomRating(router.primary());
+            router.markWritten();
             break;
           case 7:
-            viewSystemData(conn);
+            viewSystemData(router);
             break;
           case 0:
             running = false;
@@ -172,18 +228,7 @@ public class HotelBookingSystem {
       double maxPrice = scanner.nextDouble();
       scanner.nextLine();
 
-      String sql = "SELECT r.room_id, r.room_number, r.price_per_night, " +
-          "r.availability, r.description, " +
-          "COUNT(rt.rating) as rating_count, " +
-          "COALESCE(AVG(rt.rating), 0) as avg_rating " +
-          "FROM ROOM r " +
-          "LEFT JOIN RATES rt ON r.room_id = rt.room_id " +
-          "WHERE r.price_per_night BETWEEN ? AND ? " +
-          "GROUP BY r.room_id, r.room_number, r.price_per_night, " +
-          "r.availability, r.description " +
-          "ORDER BY r.price_per_night";
-
-      try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+      try (PreparedStatement pstmt = conn.prepareStatement(SEARCH_BY_PRICE_SQL)) {
         pstmt.setDouble(1, minPrice);
         pstmt.setDouble(2, maxPrice);
         ResultSet rs = pstmt.executeQuery();
@@ -266,7 +311,9 @@ public class HotelBookingSystem {
     }
   }
 
-  private static void createBookingWithItems(Connection conn) throws SQLException {
+  private static void createBookingWithItems(ConnectionRouter router) throws SQLException {
+    Connection conn = router.primary();
+
     System.out.println("\n+------------------------------------------+");
     System.out.println("|   New Reservation (TRANSACTION MODE)     |");
     System.out.println("+------------------------------------------+");
@@ -289,6 +336,27 @@ public class HotelBookingSystem {
       rs.close();
     }
 
+    System.out.print("\nRequest key (ENTER to generate new): ");
+    String requestKey = scanner.nextLine().trim();
+
+    if (requestKey.isEmpty()) {
+      requestKey = UUID.randomUUID().toString();
+    } else if (requestKey.length() > REQUEST_KEY_MAX_LENGTH) {
+      System.out.println("!! Request key must be at most " + REQUEST_KEY_MAX_LENGTH + " characters");
+      return;
+    } else {
+      StoredRequest existing = findBookingByRequestKey(conn, requestKey);
+      if (existing != null && existing.guestId() != guestId) {
+        System.out.println("!! Request key already used by another guest's reservation");
+        return;
+      }
+      if (existing != null) {
+        System.out.println(">> Request key already used - existing reservation ID: " + existing.bookingId());
+        return;
+      }
+    }
+    System.out.println(">> Request key: " + requestKey);
+
     System.out.println("\n-- Delivery Address Information --");
     System.out.print("Country: ");
     String country = scanner.nextLine();
@@ -299,12 +367,116 @@ public class HotelBookingSystem {
     System.out.print("Street address: ");
     String addressLine = scanner.nextLine();
 
-    boolean autoCommit = conn.getAutoCommit();
-    conn.setAutoCommit(false);
+    List<BookingItem> items = new ArrayList<>();
+    boolean addingItems = true;
+
+    while (addingItems) {
+      System.out.println("\n-- Adding Room to Reservation --");
+      showAvailableRooms(conn);
+
+      System.out.print("\nRoom ID (enter 0 to finish): ");
+      int roomId = scanner.nextInt();
+      scanner.nextLine();
+
+      if (roomId == 0) {
+        if (items.isEmpty()) {
+          System.out.println("!! Reservation must contain at least one room");
+          return;
+        }
+        addingItems = false;
+        continue;
+      }
+
+      String getRoom = "SELECT room_number, price_per_night, availability FROM ROOM WHERE room_id = ?";
+      double price;
+      int maxAvailability;
+      String roomNumber;
 
+      try (PreparedStatement pstmt = conn.prepareStatement(getRoom)) {
+        pstmt.setInt(1, roomId);
+        ResultSet rs = pstmt.executeQuery();
+
+        if (!rs.next()) {
+          System.out.println("!! Room not found");
+          rs.close();
+          continue;
+        }
+
+        roomNumber = rs.getString("room_number");
+        price = rs.getDouble("price_per_night");
+        maxAvailability = rs.getInt("availability");
+        rs.close();
+      }
+
+      System.out.println("Selected room: " + roomNumber);
+      System.out.println("Rate per night: " + price + " EUR");
+      System.out.println("Available units: " + maxAvailability);
+
+      System.out.print("Number of nights: ");
+      int nights = scanner.nextInt();
+      scanner.nextLine();
+
+      if (nights <= 0 || nights > maxAvailability) {
+        System.out.println("!! Invalid nights quantity");
+        continue;
+      }
+
+      items.add(new BookingItem(roomId, nights));
+      System.out.println(">> Room added to reservation");
+    }
+
+    BookingResult result;
     try {
-      String insertBooking = "INSERT INTO BOOKING (guest_id, status, country, city, postal_code, address_line) " +
-          "VALUES (?, 'New', ?, ?, ?, ?) RETURNING booking_id";
+      result = submitBooking(router, requestKey, guestId, country, city, postalCode, addressLine, items);
+    } catch (SQLException e) {
+      if (isConnectionLoss(e)) {
+        System.out.println("\n!! Connection lost - reservation outcome unknown");
+        System.out.println("!! Resubmit with request key " + requestKey + " to find out;");
+        System.out.println("!! an already committed reservation is returned instead of a new one");
+      } else {
+        System.out.println("\n!! Reservation failed - transaction rolled back");
+      }
+      throw e;
+    }
+
+    if (result.replayed()) {
+      System.out.println("\n>> Reservation already recorded with ID: " + result.bookingId());
+      return;
+    }
+
+    System.out.println("\n+------------------------------------------+");
+    System.out.println("|   Reservation completed successfully!    |");
+    System.out.println("+------------------------------------------+");
+    System.out.println(">> Reservation ID: " + result.bookingId());
+    System.out.println(">> Total price calculated by trigger");
+  }
+
+  // Replaying a request key returns the booking it created; reusing it for a
+  // different request is an error
+  static BookingResult submitBooking(ConnectionRouter router, String requestKey, int guestId,
+      String country, String city, String postalCode, String addressLine,
+      List<BookingItem> items) throws SQLException {
+    return submitBooking(router, requestKey, guestId, country, city, postalCode, addressLine,
+        items, HotelBookingSystem::reportRetry);
+  }
+
+  static BookingResult submitBooking(ConnectionRouter router, String requestKey, int guestId,
+      String country, String city, String postalCode, String addressLine,
+      List<BookingItem> items, Consumer<SQLException> onRetry) throws SQLException {
+    String requestHash = hashBookingRequest(guestId, country, city, postalCode, addressLine, items);
+
+    return runInTransaction(router, conn -> {
+      BookingResult replay = replayBooking(conn, requestKey, requestHash);
+      if (replay != null) {
+        return replay;
+      }
+
+      lockRoomsInOrder(conn, items);
+
+      String insertBooking = "INSERT INTO BOOKING " +
+          "(guest_id, status, country, city, postal_code, address_line, request_key, request_hash) " +
+          "VALUES (?, 'New', ?, ?, ?, ?, ?, ?) " +
+          "ON CONFLICT (request_key) DO NOTHING RETURNING booking_id";
 
       int bookingId;
       try (PreparedStatement pstmt = conn.prepareStatement(insertBooking)) {
@@ -313,102 +485,200 @@ public class HotelBookingSystem {
         pstmt.setString(3, city);
         pstmt.setString(4, postalCode);
         pstmt.setString(5, addressLine);
+        pstmt.setString(6, requestKey);
+        pstmt.setString(7, requestHash);
 
         ResultSet rs = pstmt.executeQuery();
         if (!rs.next()) {
-          throw new SQLException("Booking creation failed");
+          rs.close();
+          // A concurrent submission with the same key committed first
+          replay = replayBooking(conn, requestKey, requestHash);
+          if (replay == null) {
+            throw new SQLException("Booking creation failed");
+          }
+          return replay;
         }
         bookingId = rs.getInt(1);
         rs.close();
       }
 
-      System.out.println("\n>> Reservation created with ID: " + bookingId);
+      String insertItem = "INSERT INTO BOOKING_ITEM (booking_id, item_number, room_id, nights, price) " +
+          "SELECT ?, ?, room_id, ?, price_per_night FROM ROOM WHERE room_id = ?";
 
-      boolean addingItems = true;
-      int itemNumber = 1;
-
-      while (addingItems) {
-        System.out.println("\n-- Adding Room to Reservation --");
-        showAvailableRooms(conn);
-
-        System.out.print("\nRoom ID (enter 0 to finish): ");
-        int roomId = scanner.nextInt();
-        scanner.nextLine();
+      try (PreparedStatement pstmt = conn.prepareStatement(insertItem)) {
+        int itemNumber = 1;
+        for (BookingItem item : items) {
+          pstmt.setInt(1, bookingId);
+          pstmt.setInt(2, itemNumber++);
+          pstmt.setInt(3, item.nights());
+          pstmt.setInt(4, item.roomId());
 
-        if (roomId == 0) {
-          if (itemNumber == 1) {
-            throw new SQLException("Reservation must contain at least one room");
+          if (pstmt.executeUpdate() == 0) {
+            throw new SQLException("Room not found: " + item.roomId());
           }
-          addingItems = false;
-          continue;
         }
+      }
 
-        String getRoom = "SELECT room_number, price_per_night, availability FROM ROOM WHERE room_id = ?";
-        double price;
-        int maxAvailability;
-        String roomNumber;
+      return new BookingResult(bookingId, false);
+    }, onRetry);
+  }
 
-        try (PreparedStatement pstmt = conn.prepareStatement(getRoom)) {
-          pstmt.setInt(1, roomId);
-          ResultSet rs = pstmt.executeQuery();
+  // trg_decrease_availability locks rooms in item order; taking the locks in
+  // room_id order first keeps concurrent multi-room bookings deadlock-free
+  private static void lockRoomsInOrder(Connection conn, List<BookingItem> items) throws SQLException {
+    Integer[] roomIds = items.stream()
+        .map(BookingItem::roomId)
+        .sorted()
+        .distinct()
+        .toArray(Integer[]::new);
 
-          if (!rs.next()) {
-            System.out.println("!! Room not found");
-            rs.close();
-            continue;
-          }
+    String sql = "SELECT room_id FROM ROOM WHERE room_id = ANY(?) ORDER BY room_id FOR NO KEY UPDATE";
+    try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+      pstmt.setArray(1, conn.createArrayOf("integer", roomIds));
+      ResultSet rs = pstmt.executeQuery();
+      while (rs.next()) {
+        // locks are taken as rows are returned
+      }
+      rs.close();
+    }
+  }
 
-          roomNumber = rs.getString("room_number");
-          price = rs.getDouble("price_per_night");
-          maxAvailability = rs.getInt("availability");
-          rs.close();
-        }
+  private static BookingResult replayBooking(Connection conn, String requestKey, String requestHash)
+      throws SQLException {
+    StoredRequest existing = findBookingByRequestKey(conn, requestKey);
+    if (existing == null) {
+      return null;
+    }
+    if (!requestHash.equals(existing.requestHash())) {
+      throw new SQLException("Request key " + requestKey + " was already used for a different reservation",
+          "23505");
+    }
+    return new BookingResult(existing.bookingId(), true);
+  }
 
-        System.out.println("Selected room: " + roomNumber);
-        System.out.println("Rate per night: " + price + " EUR");
-        System.out.println("Available units: " + maxAvailability);
+  private static StoredRequest findBookingByRequestKey(Connection conn, String requestKey)
+      throws SQLException {
+    String sql = "SELECT booking_id, guest_id, request_hash FROM BOOKING WHERE request_key = ?";
+    try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+      pstmt.setString(1, requestKey);
+      ResultSet rs = pstmt.executeQuery();
+      StoredRequest existing = rs.next()
+          ? new StoredRequest(rs.getInt("booking_id"), rs.getInt("guest_id"), rs.getString("request_hash"))
+          : null;
+      rs.close();
+      return existing;
+    }
+  }
 
-        System.out.print("Number of nights: ");
-        int nights = scanner.nextInt();
-        scanner.nextLine();
+  private static String hashBookingRequest(int guestId, String country, String city,
+      String postalCode, String addressLine, List<BookingItem> items) {
+    StringBuilder payload = new StringBuilder()
+        .append(guestId).append('\0')
+        .append(country).append('\0')
+        .append(city).append('\0')
+        .append(postalCode).append('\0')
+        .append(addressLine);
+    for (BookingItem item : items) {
+      payload.append('\0').append(item.roomId()).append(':').append(item.nights());
+    }
 
-        if (nights <= 0 || nights > maxAvailability) {
-          System.out.println("!! Invalid nights quantity");
-          continue;
-        }
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      return HexFormat.of().formatHex(digest.digest(payload.toString().getBytes(StandardCharsets.UTF_8)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 not available", e);
+    }
+  }
 
-        String insertItem = "INSERT INTO BOOKING_ITEM (booking_id, item_number, room_id, nights, price) " +
-            "VALUES (?, ?, ?, ?, ?)";
+  static <T> T runInTransaction(ConnectionRouter router, TransactionWork<T> work) throws SQLException {
+    return runInTransaction(router, work, HotelBookingSystem::reportRetry);
+  }
 
-        try (PreparedStatement pstmt = conn.prepareStatement(insertItem)) {
-          pstmt.setInt(1, bookingId);
-          pstmt.setInt(2, itemNumber);
-          pstmt.setInt(3, roomId);
-          pstmt.setInt(4, nights);
-          pstmt.setDouble(5, price);
+  private static void reportRetry(SQLException e) {
+    System.out.println("!! Transient error (" + e.getSQLState() + "), retrying...");
+  }
 
-          pstmt.executeUpdate();
+  // The work may run more than once, so it must be idempotent
+  static <T> T runInTransaction(ConnectionRouter router, TransactionWork<T> work,
+      Consumer<SQLException> onRetry) throws SQLException {
+    boolean reconnect = false;
+
+    for (int attempt = 1; ; attempt++) {
+      if (reconnect) {
+        try {
+          router.reconnectPrimary();
+          reconnect = false;
+        } catch (SQLException e) {
+          if (!isTransient(e) || attempt >= MAX_TRANSACTION_ATTEMPTS) {
+            throw e;
+          }
+          onRetry.accept(e);
+          sleepBeforeRetry(attempt);
+          continue;
         }
+      }
 
-        System.out.println(">> Room added to reservation");
-        itemNumber++;
+      Connection conn = router.primary();
+      boolean autoCommit = true;
+
+      try {
+        autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        T result = work.run(conn);
+        conn.commit();
+        return result;
+      } catch (SQLException e) {
+        rollbackQuietly(conn);
+        if (!isTransient(e) || attempt >= MAX_TRANSACTION_ATTEMPTS) {
+          throw e;
+        }
+        onRetry.accept(e);
+      } catch (RuntimeException | Error e) {
+        // restoring autocommit below would otherwise commit the partial work
+        rollbackQuietly(conn);
+        throw e;
+      } finally {
+        try {
+          conn.setAutoCommit(autoCommit);
+        } catch (SQLException e) {
+          // broken connection, replaced before the next attempt
+        }
       }
 
-      conn.commit();
-      System.out.println("\n+------------------------------------------+");
-      System.out.println("|   Reservation completed successfully!    |");
-      System.out.println("+------------------------------------------+");
-      System.out.println(">> Total price calculated by trigger");
+      sleepBeforeRetry(attempt);
+      reconnect = conn.isClosed() || !conn.isValid(5);
+    }
+  }
 
-    } catch (SQLException e) {
+  private static void rollbackQuietly(Connection conn) {
+    try {
       conn.rollback();
-      System.out.println("\n!! Reservation failed - transaction rolled back");
-      throw e;
-    } finally {
-      conn.setAutoCommit(autoCommit);
+    } catch (SQLException e) {
+      // connection is gone, the server has already discarded the transaction
+    }
+  }
+
+  private static void sleepBeforeRetry(int attempt) throws SQLException {
+    try {
+      long backoff = RETRY_BASE_DELAY_MS << (attempt - 1);
+      Thread.sleep(backoff + ThreadLocalRandom.current().nextLong(backoff));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLException("Interrupted while waiting to retry", "57014", e);
     }
   }
 
+  static boolean isTransient(SQLException e) {
+    return "40001".equals(e.getSQLState()) || "40P01".equals(e.getSQLState()) || isConnectionLoss(e);
+  }
+
+  // A server restart reports 57P01/57P02 on open connections and 57P03 while starting up
+  static boolean isConnectionLoss(SQLException e) {
+    String state = e.getSQLState();
+    return state != null
+        && (state.startsWith("08") || state.equals("57P01") || state.equals("57P02") || state.equals("57P03"));
+  }
+
   private static void cancelBooking(Connection conn) throws SQLException {
     System.out.println("\n+--- Reservation Cancellation ---+");
 
@@ -604,7 +874,7 @@ public class HotelBookingSystem {
     }
   }
 
-  private static void viewSystemData(Connection conn) throws SQLException {
+  private static void viewSystemData(ConnectionRouter router) throws SQLException {
     boolean back = false;
 
     while (!back) {
@@ -622,12 +892,12 @@ public class HotelBookingSystem {
       scanner.nextLine();
 
       switch (choice) {
-        case 1 -> showAllGuests(conn);
-        case 2 -> showAllRooms(conn);
-        case 3 -> showAllBookings(conn);
-        case 4 -> showAllRatings(conn);
-        case 5 -> showGuestStatistics(conn);
-        case 6 -> showRoomStatistics(conn);
+        case 1 -> showAllGuests(router.forRead());
+        case 2 -> showAllRooms(router.forRead());
+        case 3 -> showAllBookings(router.forRead());
+        case 4 -> showAllRatings(router.forRead());
+        case 5 -> showGuestStatistics(router.forRead());
+        case 6 -> showRoomStatistics(router.forRead());
         case 0 -> back = true;
         default -> System.out.println("!! Invalid selection");
       }
@@ -698,10 +968,8 @@ public class HotelBookingSystem {
   }
 
   private static void showGuestStatistics(Connection conn) throws SQLException {
-    String sql = "SELECT * FROM guest_booking_statistics ORDER BY total_spent DESC";
-
     try (Statement stmt = conn.createStatement();
-        ResultSet rs = stmt.executeQuery(sql)) {
+        ResultSet rs = stmt.executeQuery(GUEST_STATISTICS_SQL)) {
 
       System.out.println("~".repeat(98));
       System.out.printf("| %-4s | %-18s | %-18s | %9s | %11s | %8s |%n",
@@ -722,10 +990,8 @@ public class HotelBookingSystem {
   }
 
   private static void showRoomStatistics(Connection conn) throws SQLException {
-    String sql = "SELECT * FROM room_statistics ORDER BY revenue DESC";
-
     try (Statement stmt = conn.createStatement();
-        ResultSet rs = stmt.executeQuery(sql)) {
+        ResultSet rs = stmt.executeQuery(ROOM_STATISTICS_SQL)) {
 
       System.out.println("~".repeat(102));
       System.out.printf("| %-4s | %-10s | %11s | %11s | %11s | %10s | %8s |%n",
@@ -0,0 +1,681 @@
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load generator: each simulated guest runs on its own thread and connection.
+ *
+ * Usage:
+ *   java -cp .:postgresql.jar LoadTest --url jdbc:postgresql://localhost/hotel
+ *       --user postgres [--password ...] [--guests 50] [--duration 60]
+ *       [--mode closed|open] [--rate 200] [--think 0]
+ *       [--mix search=40,book=20,cancel=10,rate=10,browse=20]
+ *       [--replicas url1,url2] [--replica-max-lag 5]
+ *       [--scenario contention] [--hot-rooms 4] [--top-up 10000] [--unordered-booking]
+ */
+public class LoadTest {
+  enum Op { SEARCH, BOOK, CANCEL, RATE, BROWSE }
+
+  private static final String DEFAULT_MIX = "search=40,book=20,cancel=10,rate=10,browse=20";
+  private static final String CONTENTION_MIX = "book=50,cancel=50";
+
+  private static class Stats {
+    final long[][] latencies = new long[Op.values().length][];
+    final int[] latencyCounts = new int[Op.values().length];
+    final long[] ok = new long[Op.values().length];
+    final long[] rejected = new long[Op.values().length];
+    final long[] failed = new long[Op.values().length];
+    long deadlocks = 0;
+    long serializationFailures = 0;
+    long connectionErrors = 0;
+    long elapsedNanos = 0;
+
+    Stats() {
+      for (int i = 0; i < latencies.length; i++) {
+        latencies[i] = new long[1024];
+      }
+    }
+
+    void record(Op op, long nanos) {
+      int i = op.ordinal();
+      if (latencyCounts[i] == latencies[i].length) {
+        latencies[i] = Arrays.copyOf(latencies[i], latencies[i].length * 2);
+      }
+      latencies[i][latencyCounts[i]++] = nanos;
+    }
+
+    void countError(SQLException e) {
+      String state = e.getSQLState();
+      if ("40P01".equals(state)) {
+        deadlocks++;
+      } else if ("40001".equals(state)) {
+        serializationFailures++;
+      } else if (state != null && state.startsWith("08")) {
+        connectionErrors++;
+      }
+    }
+
+    void merge(Stats other) {
+      for (int i = 0; i < latencies.length; i++) {
+        for (int j = 0; j < other.latencyCounts[i]; j++) {
+          record(Op.values()[i], other.latencies[i][j]);
+        }
+        ok[i] += other.ok[i];
+        rejected[i] += other.rejected[i];
+        failed[i] += other.failed[i];
+      }
+      deadlocks += other.deadlocks;
+      serializationFailures += other.serializationFailures;
+      connectionErrors += other.connectionErrors;
+    }
+  }
+
+  private static class Config {
+    String url = "jdbc:postgresql://localhost:5432/postgres";
+    String user = "postgres";
+    String password = System.getenv("PGPASSWORD");
+    String replicas = null;
+    double replicaMaxLag = 5;
+    int guests = 50;
+    int durationSeconds = 60;
+    boolean openLoop = false;
+    double rate = 200;
+    long thinkMs = 0;
+    int[] weights = parseMix(DEFAULT_MIX);
+    int hotRooms = 0;
+    int topUp = 0;
+    int minItems = 1;
+    int maxItems = 3;
+    boolean failOnDeadlock = false;
+    boolean unorderedBooking = false;
+  }
+
+  private static class Guest implements Runnable {
+    final Config config;
+    final ConnectionRouter router;
+    final int guestId;
+    final List<Integer> roomIds;
+    final List<Integer> activeBookings = new ArrayList<>();
+    final Random random;
+    final Stats stats = new Stats();
+    final CountDownLatch done;
+    long startNanos;
+    long endNanos;
+
+    Guest(Config config, ConnectionRouter router, int guestId, List<Integer> roomIds,
+        long seed, CountDownLatch done) {
+      this.config = config;
+      this.router = router;
+      this.guestId = guestId;
+      this.roomIds = roomIds;
+      this.random = new Random(seed);
+      this.done = done;
+    }
+
+    @Override
+    public void run() {
+      try {
+        if (config.openLoop) {
+          runOpenLoop();
+        } else {
+          runClosedLoop();
+        }
+      } finally {
+        done.countDown();
+      }
+    }
+
+    private void runClosedLoop() {
+      while (System.nanoTime() < endNanos) {
+        Op op = pickOp();
+        long t0 = System.nanoTime();
+        if (execute(op)) {
+          stats.record(op, System.nanoTime() - t0);
+        }
+
+        if (config.thinkMs > 0) {
+          sleepNanos(TimeUnit.MILLISECONDS.toNanos(config.thinkMs));
+        }
+      }
+    }
+
+    private void runOpenLoop() {
+      long interval = (long) (1e9 * config.guests / config.rate);
+      long scheduled = startNanos + (long) (random.nextDouble() * interval);
+
+      while (scheduled < endNanos) {
+        sleepNanos(scheduled - System.nanoTime());
+
+        Op op = pickOp();
+        if (execute(op)) {
+          stats.record(op, System.nanoTime() - scheduled);
+        }
+        scheduled += interval;
+      }
+    }
+
+    private Op pickOp() {
+      int total = 0;
+      for (int w : config.weights) {
+        total += w;
+      }
+
+      int roll = random.nextInt(total);
+      for (Op op : Op.values()) {
+        roll -= config.weights[op.ordinal()];
+        if (roll < 0) {
+          return op;
+        }
+      }
+      return Op.SEARCH;
+    }
+
+    // false if skipped without touching the database
+    private boolean execute(Op op) {
+      if (op == Op.CANCEL && activeBookings.isEmpty()) {
+        stats.rejected[op.ordinal()]++;
+        return false;
+      }
+
+      try {
+        boolean accepted = switch (op) {
+          case SEARCH -> search();
+          case BOOK -> book();
+          case CANCEL -> cancel();
+          case RATE -> rate();
+          case BROWSE -> browse();
+        };
+
+        if (accepted) {
+          stats.ok[op.ordinal()]++;
+        } else {
+          stats.rejected[op.ordinal()]++;
+        }
+      } catch (SQLException e) {
+        stats.failed[op.ordinal()]++;
+        stats.countError(e);
+      }
+      return true;
+    }
+
+    private boolean search() throws SQLException {
+      double minPrice = 20 + random.nextInt(100);
+      try (PreparedStatement pstmt = router.forRead().prepareStatement(HotelBookingSystem.SEARCH_BY_PRICE_SQL)) {
+        pstmt.setDouble(1, minPrice);
+        pstmt.setDouble(2, minPrice + 100);
+        drain(pstmt.executeQuery());
+      }
+      return true;
+    }
+
+    private boolean book() throws SQLException {
+      int maxItems = Math.min(config.maxItems, roomIds.size());
+      int minItems = Math.min(config.minItems, maxItems);
+      int count = minItems + random.nextInt(maxItems - minItems + 1);
+      List<Integer> candidates = new ArrayList<>(roomIds);
+      List<HotelBookingSystem.BookingItem> items = new ArrayList<>();
+
+      for (int i = 0; i < count; i++) {
+        int roomId = candidates.remove(random.nextInt(candidates.size()));
+        items.add(new HotelBookingSystem.BookingItem(roomId, 1 + random.nextInt(2)));
+      }
+
+      try {
+        int bookingId = config.unorderedBooking
+            ? submitUnordered(items)
+            : HotelBookingSystem.submitBooking(
+                router, UUID.randomUUID().toString(), guestId,
+                "Lithuania", "Vilnius", "LT-01100", "Load test " + guestId, items,
+                stats::countError).bookingId();
+        activeBookings.add(bookingId);
+        router.markWritten();
+        return true;
+      } catch (SQLException e) {
+        if ("23514".equals(e.getSQLState())) {
+          // availability would go below zero - room is sold out
+          return false;
+        }
+        throw e;
+      }
+    }
+
+    // Baseline without the room pre-lock, for --unordered-booking
+    private int submitUnordered(List<HotelBookingSystem.BookingItem> items) throws SQLException {
+      return HotelBookingSystem.runInTransaction(router, conn -> {
+        int bookingId;
+        try (PreparedStatement pstmt = conn.prepareStatement(
+            "INSERT INTO BOOKING (guest_id, status) VALUES (?, 'New') RETURNING booking_id")) {
+          pstmt.setInt(1, guestId);
+          ResultSet rs = pstmt.executeQuery();
+          rs.next();
+          bookingId = rs.getInt(1);
+          rs.close();
+        }
+
+        String insertItem = "INSERT INTO BOOKING_ITEM (booking_id, item_number, room_id, nights, price) " +
+            "SELECT ?, ?, room_id, ?, price_per_night FROM ROOM WHERE room_id = ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(insertItem)) {
+          int itemNumber = 1;
+          for (HotelBookingSystem.BookingItem item : items) {
+            pstmt.setInt(1, bookingId);
+            pstmt.setInt(2, itemNumber++);
+            pstmt.setInt(3, item.nights());
+            pstmt.setInt(4, item.roomId());
+            pstmt.executeUpdate();
+          }
+        }
+        return bookingId;
+      }, stats::countError);
+    }
+
+    private boolean cancel() throws SQLException {
+      int bookingId = activeBookings.remove(random.nextInt(activeBookings.size()));
+      String sql = "UPDATE BOOKING SET status = 'Cancelled' " +
+          "WHERE booking_id = ? AND status != 'Cancelled'";
+
+      int rows = HotelBookingSystem.runInTransaction(router, conn -> {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+          pstmt.setInt(1, bookingId);
+          return pstmt.executeUpdate();
+        }
+      }, stats::countError);
+      router.markWritten();
+      return rows > 0;
+    }
+
+    private boolean rate() throws SQLException {
+      String sql = "INSERT INTO RATES (guest_id, room_id, rating, review) VALUES (?, ?, ?, ?) " +
+          "ON CONFLICT (guest_id, room_id) DO UPDATE SET rating = EXCLUDED.rating";
+
+      try (PreparedStatement pstmt = router.primary().prepareStatement(sql)) {
+        pstmt.setInt(1, guestId);
+        pstmt.setInt(2, roomIds.get(random.nextInt(roomIds.size())));
+        pstmt.setInt(3, 1 + random.nextInt(5));
+        pstmt.setString(4, null);
+        pstmt.executeUpdate();
+      }
+      router.markWritten();
+      return true;
+    }
+
+    private boolean browse() throws SQLException {
+      String sql = random.nextBoolean()
+          ? HotelBookingSystem.GUEST_STATISTICS_SQL
+          : HotelBookingSystem.ROOM_STATISTICS_SQL;
+
+      try (Statement stmt = router.forRead().createStatement()) {
+        drain(stmt.executeQuery(sql));
+      }
+      return true;
+    }
+
+    private static void drain(ResultSet rs) throws SQLException {
+      while (rs.next()) {
+        rs.getObject(1);
+      }
+      rs.close();
+    }
+
+    private static void sleepNanos(long nanos) {
+      if (nanos <= 0) {
+        return;
+      }
+      try {
+        TimeUnit.NANOSECONDS.sleep(nanos);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    Config config = parseArgs(args);
+    Class.forName("org.postgresql.Driver");
+
+    Properties credentials = new Properties();
+    credentials.setProperty("user", config.user);
+    if (config.password != null) {
+      credentials.setProperty("password", config.password);
+    }
+
+    try (Connection admin = DriverManager.getConnection(config.url, credentials)) {
+      List<Integer> roomIds = loadRoomIds(admin);
+      if (roomIds.isEmpty()) {
+        System.err.println("!! ROOM table is empty - run inserts.sql first");
+        System.exit(1);
+      }
+      if (config.hotRooms > 0 && config.hotRooms < roomIds.size()) {
+        roomIds = roomIds.subList(0, config.hotRooms);
+      }
+
+      if (config.topUp > 0) {
+        adjustAvailability(admin, roomIds, config.topUp);
+      }
+
+      Map<Integer, Integer> capacityBefore = roomCapacity(admin);
+      List<Integer> guestIds = createGuests(admin, config.guests);
+
+      System.out.println("+------------------------------------------+");
+      System.out.println("|           Hotel Load Test                |");
+      System.out.println("+------------------------------------------+");
+      System.out.printf(">> Guests: %d, rooms: %d, duration: %ds, mode: %s%n",
+          config.guests, roomIds.size(), config.durationSeconds,
+          config.openLoop ? "open (" + config.rate + " ops/s)" : "closed");
+      System.out.println(">> Booking path: " + (config.unorderedBooking ? "unordered (no pre-lock)" : "submitBooking"));
+
+      boolean consistent;
+      boolean deadlockFree;
+      try {
+        Stats total = run(config, credentials, guestIds, roomIds);
+
+        report(total);
+        consistent = checkConsistency(admin, capacityBefore);
+        deadlockFree = !config.failOnDeadlock || total.deadlocks == 0;
+
+        if (config.failOnDeadlock) {
+          System.out.println(deadlockFree
+              ? "\n>> Contention test passed: no deadlocks"
+              : "\n!! Contention test failed: " + total.deadlocks + " deadlocks");
+        }
+      } finally {
+        try {
+          removeGuests(admin, guestIds);
+        } finally {
+          if (config.topUp > 0) {
+            adjustAvailability(admin, roomIds, -config.topUp);
+          }
+        }
+      }
+      System.exit(consistent && deadlockFree ? 0 : 1);
+    }
+  }
+
+  private static Stats run(Config config, Properties credentials, List<Integer> guestIds,
+      List<Integer> roomIds) throws SQLException, InterruptedException {
+    CountDownLatch done = new CountDownLatch(guestIds.size());
+    List<Guest> guests = new ArrayList<>();
+    List<Thread> threads = new ArrayList<>();
+    long start;
+    long elapsed;
+
+    try {
+      for (int i = 0; i < guestIds.size(); i++) {
+        ConnectionRouter router = ConnectionRouter.connect(
+            config.url, config.replicas, credentials, config.replicaMaxLag);
+        guests.add(new Guest(config, router, guestIds.get(i), roomIds, 31L * i + 7, done));
+      }
+
+      start = System.nanoTime();
+      long end = start + TimeUnit.SECONDS.toNanos(config.durationSeconds);
+      for (Guest guest : guests) {
+        guest.startNanos = start;
+        guest.endNanos = end;
+        Thread thread = new Thread(guest, "guest-" + guest.guestId);
+        threads.add(thread);
+        thread.start();
+      }
+
+      done.await();
+      for (Thread thread : threads) {
+        thread.join();
+      }
+      elapsed = System.nanoTime() - start;
+    } finally {
+      for (Guest guest : guests) {
+        guest.router.close();
+      }
+    }
+
+    Stats total = new Stats();
+    for (Guest guest : guests) {
+      total.merge(guest.stats);
+    }
+    total.elapsedNanos = elapsed;
+    return total;
+  }
+
+  private static List<Integer> loadRoomIds(Connection conn) throws SQLException {
+    List<Integer> roomIds = new ArrayList<>();
+    try (Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery("SELECT room_id FROM ROOM ORDER BY room_id")) {
+      while (rs.next()) {
+        roomIds.add(rs.getInt(1));
+      }
+    }
+    return roomIds;
+  }
+
+  private static List<Integer> createGuests(Connection conn, int count) throws SQLException {
+    String runId = Long.toString(System.currentTimeMillis(), 36);
+    String sql = "INSERT INTO GUEST (first_name, last_name, email) VALUES (?, ?, ?) RETURNING guest_id";
+    List<Integer> guestIds = new ArrayList<>();
+
+    try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+      for (int i = 0; i < count; i++) {
+        pstmt.setString(1, "Load");
+        pstmt.setString(2, "Guest " + i);
+        pstmt.setString(3, "load-" + runId + "-" + i + "@loadtest.local");
+
+        ResultSet rs = pstmt.executeQuery();
+        rs.next();
+        guestIds.add(rs.getInt(1));
+        rs.close();
+      }
+    }
+    return guestIds;
+  }
+
+  private static void adjustAvailability(Connection conn, List<Integer> roomIds, int delta)
+      throws SQLException {
+    String sql = "UPDATE ROOM SET availability = availability + ? WHERE room_id = ANY(?)";
+    try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+      pstmt.setInt(1, delta);
+      pstmt.setArray(2, conn.createArrayOf("integer", roomIds.toArray()));
+      pstmt.executeUpdate();
+    }
+    System.out.printf(">> %s %d units on rooms %s%n", delta > 0 ? "Added" : "Removed", Math.abs(delta), roomIds);
+  }
+
+  // Cancel first so the trigger returns the nights; the delete cascade alone would not
+  private static void removeGuests(Connection conn, List<Integer> guestIds) throws SQLException {
+    Array ids = conn.createArrayOf("integer", guestIds.toArray());
+
+    try (PreparedStatement cancel = conn.prepareStatement(
+            "UPDATE BOOKING SET status = 'Cancelled' WHERE guest_id = ANY(?) AND status <> 'Cancelled'");
+        PreparedStatement delete = conn.prepareStatement("DELETE FROM GUEST WHERE guest_id = ANY(?)")) {
+      cancel.setArray(1, ids);
+      cancel.executeUpdate();
+      delete.setArray(1, ids);
+      System.out.println(">> Removed " + delete.executeUpdate() + " load-test guests");
+    }
+  }
+
+  // Free units plus units held by non-cancelled bookings must not change over a run
+  private static Map<Integer, Integer> roomCapacity(Connection conn) throws SQLException {
+    String sql = "SELECT r.room_id, r.availability + " +
+        "COALESCE(SUM(bi.nights) FILTER (WHERE b.status <> 'Cancelled'), 0) AS capacity " +
+        "FROM ROOM r " +
+        "LEFT JOIN BOOKING_ITEM bi ON bi.room_id = r.room_id " +
+        "LEFT JOIN BOOKING b ON b.booking_id = bi.booking_id " +
+        "GROUP BY r.room_id, r.availability";
+
+    Map<Integer, Integer> capacity = new HashMap<>();
+    try (Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery(sql)) {
+      while (rs.next()) {
+        capacity.put(rs.getInt("room_id"), rs.getInt("capacity"));
+      }
+    }
+    return capacity;
+  }
+
+  private static boolean checkConsistency(Connection conn, Map<Integer, Integer> before)
+      throws SQLException {
+    Map<Integer, Integer> after = roomCapacity(conn);
+    int mismatches = 0;
+
+    System.out.println("\n+--- ROOM.availability vs BOOKING_ITEM ---+");
+    for (Map.Entry<Integer, Integer> entry : before.entrySet()) {
+      Integer now = after.get(entry.getKey());
+      if (!entry.getValue().equals(now)) {
+        mismatches++;
+        System.out.printf("!! Room %d: capacity %d before, %s after%n",
+            entry.getKey(), entry.getValue(), now);
+      }
+    }
+
+    if (mismatches == 0) {
+      System.out.println(">> Consistent: availability matches booked nights for all " + before.size() + " rooms");
+    } else {
+      System.out.println("!! Inconsistent rooms: " + mismatches);
+    }
+    return mismatches == 0;
+  }
+
+  private static void report(Stats stats) {
+    double seconds = stats.elapsedNanos / 1e9;
+    long totalOps = 0;
+
+    System.out.println("\n" + "=".repeat(104));
+    System.out.printf("| %-7s | %8s | %8s | %8s | %7s | %9s | %9s | %9s | %9s |%n",
+        "Op", "OK", "Rejected", "Failed", "Ops/s", "p50 ms", "p95 ms", "p99 ms", "max ms");
+    System.out.println("=".repeat(104));
+
+    for (Op op : Op.values()) {
+      int i = op.ordinal();
+      long[] sorted = Arrays.copyOf(stats.latencies[i], stats.latencyCounts[i]);
+      Arrays.sort(sorted);
+      long ops = stats.ok[i] + stats.rejected[i] + stats.failed[i];
+      totalOps += ops;
+
+      System.out.printf("| %-7s | %8d | %8d | %8d | %7.1f | %9.2f | %9.2f | %9.2f | %9.2f |%n",
+          op.name().toLowerCase(),
+          stats.ok[i],
+          stats.rejected[i],
+          stats.failed[i],
+          ops / seconds,
+          percentile(sorted, 50),
+          percentile(sorted, 95),
+          percentile(sorted, 99),
+          sorted.length == 0 ? 0.0 : sorted[sorted.length - 1] / 1e6);
+    }
+    System.out.println("=".repeat(104));
+
+    System.out.printf(">> Elapsed: %.2fs%n", seconds);
+    System.out.printf(">> Throughput: %.1f ops/s, %.1f reservations/s%n",
+        totalOps / seconds, stats.ok[Op.BOOK.ordinal()] / seconds);
+    System.out.println(">> Deadlocks (40P01): " + stats.deadlocks);
+    System.out.println(">> Serialization failures (40001): " + stats.serializationFailures);
+    System.out.println(">> Connection errors (08xxx): " + stats.connectionErrors);
+  }
+
+  private static double percentile(long[] sorted, double p) {
+    if (sorted.length == 0) {
+      return 0;
+    }
+    int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+    return sorted[Math.max(rank - 1, 0)] / 1e6;
+  }
+
+  private static Config parseArgs(String[] args) {
+    Config config = new Config();
+
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("--unordered-booking")) {
+        config.unorderedBooking = true;
+        continue;
+      }
+
+      String value = i + 1 < args.length ? args[i + 1] : null;
+      if (value == null) {
+        usage("Missing value for " + args[i]);
+      }
+
+      switch (args[i++]) {
+        case "--url" -> config.url = value;
+        case "--user" -> config.user = value;
+        case "--password" -> config.password = value;
+        case "--replicas" -> config.replicas = value;
+        case "--replica-max-lag" -> config.replicaMaxLag = Double.parseDouble(value);
+        case "--guests" -> config.guests = Integer.parseInt(value);
+        case "--duration" -> config.durationSeconds = Integer.parseInt(value);
+        case "--mode" -> config.openLoop = value.equalsIgnoreCase("open");
+        case "--rate" -> config.rate = Double.parseDouble(value);
+        case "--think" -> config.thinkMs = Long.parseLong(value);
+        case "--mix" -> config.weights = parseMix(value);
+        case "--hot-rooms" -> config.hotRooms = Integer.parseInt(value);
+        case "--top-up" -> config.topUp = Integer.parseInt(value);
+        case "--scenario" -> {
+          if (!value.equalsIgnoreCase("contention")) {
+            usage("Unknown scenario: " + value);
+          }
+          config.weights = parseMix(CONTENTION_MIX);
+          config.minItems = 2;
+          config.maxItems = Integer.MAX_VALUE;
+          config.failOnDeadlock = true;
+          if (config.hotRooms == 0) {
+            config.hotRooms = 4;
+          }
+          if (config.topUp == 0) {
+            config.topUp = 10000;
+          }
+        }
+        default -> usage("Unknown option: " + args[i - 1]);
+      }
+    }
+
+    if (config.guests <= 0 || config.durationSeconds <= 0 || config.rate <= 0) {
+      usage("--guests, --duration and --rate must be positive");
+    }
+    if (config.topUp < 0) {
+      usage("--top-up must not be negative");
+    }
+    return config;
+  }
+
+  private static int[] parseMix(String mix) {
+    int[] weights = new int[Op.values().length];
+
+    for (String part : mix.split(",")) {
+      String[] kv = part.trim().split("=");
+      if (kv.length != 2) {
+        usage("Invalid mix entry: " + part);
+      }
+      Op op = null;
+      int weight = 0;
+      try {
+        op = Op.valueOf(kv[0].trim().toUpperCase());
+        weight = Integer.parseInt(kv[1].trim());
+      } catch (IllegalArgumentException e) {
+        usage("Invalid mix entry: " + part);
+      }
+      if (weight < 0) {
+        usage("Mix weights must not be negative: " + part);
+      }
+      weights[op.ordinal()] = weight;
+    }
+
+    if (Arrays.stream(weights).sum() <= 0) {
+      usage("Operation mix must have a positive weight");
+    }
+    return weights;
+  }
+
+  private static void usage(String error) {
+    System.err.println("!! " + error);
+    System.err.println("Use: java LoadTest --url <jdbc-url> --user <name> [--password <pw>]");
+    System.err.println("       [--guests N] [--duration SEC] [--mode closed|open] [--rate OPS]");
+    System.err.println("       [--think MS] [--mix " + DEFAULT_MIX + "]");
+    System.err.println("       [--replicas url1,url2] [--replica-max-lag SEC]");
+    System.err.println("       [--scenario contention] [--hot-rooms N] [--top-up UNITS] [--unordered-booking]");
+    System.exit(2);
+  }
+}